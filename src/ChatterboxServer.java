@@ -8,6 +8,7 @@ import java.net.ServerSocket;
 import java.net.Socket;
 import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Scanner;
 import java.util.concurrent.ConcurrentHashMap;
@@ -31,12 +32,29 @@ import java.util.concurrent.Executors;
  * - Prompts each client for "username password".
  * - Authenticates against the credentials map.
  * - After auth, broadcasts each client message to all connected clients.
+ * - Indexes recent client messages; "/search QUERY" replies to the asking
+ *   client only and is not broadcast.
  * - Sends a server heartbeat to all clients every 10 seconds.
  */
 public class ChatterboxServer {
     /** Maximum simultaneous authenticated clients / pool size. */
     private static final int MAX_CONNECTIONS = 100;
 
+    /** Maximum number of messages kept in the searchable history. */
+    private static final int HISTORY_MAX_MESSAGES = 1_000_000;
+
+    /** Maximum age of a message kept in the searchable history (24 hours). */
+    private static final long HISTORY_MAX_AGE_MILLIS = 24L * 60 * 60 * 1000;
+
+    /** Approximate heap the searchable history may use (128 MB). */
+    private static final long HISTORY_MAX_BYTES = 128L * 1024 * 1024;
+
+    /** Maximum number of results returned by a single /search. */
+    private static final int SEARCH_RESULT_LIMIT = 10;
+
+    /** Command prefix for searching message history. */
+    private static final String SEARCH_COMMAND = "/search";
+
     private final int port;
 
     /**
@@ -48,6 +66,9 @@ public class ChatterboxServer {
     /** Map of username -> password loaded at startup. */
     private final Map<String, String> user2pass;
 
+    /** Searchable index of recent client messages. */
+    private final MessageHistoryIndex history;
+
     /**
      * Simple wrapper around a Socket that provides line-based send/receive.
      * Closing the Connection closes the underlying socket and streams.
@@ -189,11 +210,13 @@ public class ChatterboxServer {
         this.port = port;
         this.connections = new ConcurrentHashMap<>();
         this.user2pass = user2pass;
+        this.history = new MessageHistoryIndex(HISTORY_MAX_MESSAGES, HISTORY_MAX_AGE_MILLIS, HISTORY_MAX_BYTES);
     }
 
     /**
      * Accept clients forever and handle each one in the thread pool.
-     * Also starts a heartbeat thread that broadcasts every 10 seconds.
+     * Also starts a heartbeat thread that broadcasts every 10 seconds and
+     * evicts expired messages from the search history.
      *
      * @throws IOException if the ServerSocket cannot be opened
      */
@@ -206,6 +229,7 @@ public class ChatterboxServer {
                 while (!Thread.currentThread().isInterrupted()) {
                     Thread.sleep(10_000);
                     sendToAll("SERVER", "heartbeat");
+                    history.evictExpired();
                 }
             } catch (InterruptedException e) {
                 Thread.currentThread().interrupt(); // exit cleanly
@@ -300,9 +324,15 @@ public class ChatterboxServer {
             try {
                 connection.sendln("Welcome to the server, " + user + "!");
                 connection.sendln("Be kind and respectful to your classmates.");
+                connection.sendln("Type '" + SEARCH_COMMAND + " words [from:user]' to search recent messages.");
 
                 String line;
                 while ((line = connection.readLine()) != null) {
+                    if (isSearchCommand(line)) {
+                        sendSearchResults(connection, line.substring(SEARCH_COMMAND.length()));
+                        continue;
+                    }
+                    history.add(user, line);
                     sendToAll(user, line);
                 }
             } finally {
@@ -314,4 +344,49 @@ public class ChatterboxServer {
             System.err.println("Connection error for client: " + e.getMessage());
         }
     }
+
+    /**
+     * @param line a line received from a client
+     * @return true if the line is a /search command rather than a chat message
+     */
+    private static boolean isSearchCommand(String line) {
+        return line.equals(SEARCH_COMMAND)
+                || (line.startsWith(SEARCH_COMMAND) && Character.isWhitespace(line.charAt(SEARCH_COMMAND.length())));
+    }
+
+    /**
+     * Run a history search and send the results to a single client.
+     *
+     * @param connection client that asked
+     * @param query search query (words and optional "from:user")
+     * @throws IOException if the client connection is broken
+     */
+    private void sendSearchResults(Connection connection, String query) throws IOException {
+        query = query.trim();
+        if (query.isEmpty()) {
+            connection.sendln("Usage: " + SEARCH_COMMAND + " words [from:user]");
+            return;
+        }
+
+        MessageHistoryIndex.SearchResult result = history.search(query, SEARCH_RESULT_LIMIT);
+        List<MessageHistoryIndex.Entry> entries = result.getEntries();
+        if (entries.isEmpty()) {
+            if (result.isTruncated()) {
+                connection.sendln("No recent messages found for '" + query + "'; older ones may match. Add terms to refine.");
+            } else {
+                connection.sendln("No messages found for '" + query + "'.");
+            }
+            return;
+        }
+
+        if (result.isTruncated()) {
+            connection.sendln("Showing " + entries.size() + " newest message(s) matching '" + query
+                    + "'; more may exist. Add terms to refine.");
+        } else {
+            connection.sendln("Newest " + entries.size() + " message(s) matching '" + query + "':");
+        }
+        for (MessageHistoryIndex.Entry entry : entries) {
+            connection.sendln("  #" + entry.getSeq() + " [" + entry.getSender() + "]: " + entry.getText());
+        }
+    }
 }
@@ -0,0 +1,556 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.LongSupplier;
+
+/**
+ * A bounded, searchable index over recent chat history.
+ *
+ * Behavior:
+ * - Each added message gets a monotonically increasing sequence number.
+ * - Keeps an inverted index (term -> postings) and a sender index
+ *   (sender -> postings). Postings are sorted primitive long arrays.
+ * - Only the first MAX_TEXT_CHARS characters and MAX_TERMS_PER_MESSAGE distinct
+ *   terms of each message are kept, so one huge line cannot flood the index.
+ * - Evicts the oldest messages once there are more than maxMessages, or once
+ *   the estimated heap use would exceed maxBytes. Eviction trims the front of
+ *   each affected posting list, so the index never has to be rebuilt.
+ * - Messages older than maxAgeMillis are evicted a chunk at a time, both on
+ *   add/search and from evictExpired(). Expired messages that have not been
+ *   evicted yet are never returned from a search.
+ * - Searches AND together all query terms (and an optional sender) and return
+ *   the newest matches first, stopping early if the query is too broad.
+ *
+ * All public methods are synchronized, so one instance can be shared by every
+ * client thread.
+ */
+public class MessageHistoryIndex {
+    /** A single message returned from a search. */
+    public static final class Entry {
+        private final long seq;
+        private final String sender;
+        private final String text;
+
+        private Entry(long seq, String sender, String text) {
+            this.seq = seq;
+            this.sender = sender;
+            this.text = text;
+        }
+
+        /**
+         * @return sequence number assigned when the message was added
+         */
+        public long getSeq() {
+            return seq;
+        }
+
+        /**
+         * @return username of the sender
+         */
+        public String getSender() {
+            return sender;
+        }
+
+        /**
+         * @return message text
+         */
+        public String getText() {
+            return text;
+        }
+    }
+
+    /** The outcome of a search: the newest matches, and whether more may exist. */
+    public static final class SearchResult {
+        private final List<Entry> entries;
+        private final boolean truncated;
+
+        private SearchResult(List<Entry> entries, boolean truncated) {
+            this.entries = entries;
+            this.truncated = truncated;
+        }
+
+        /**
+         * @return matching messages, newest first
+         */
+        public List<Entry> getEntries() {
+            return entries;
+        }
+
+        /**
+         * @return true if the search stopped early, so older matches may exist
+         */
+        public boolean isTruncated() {
+            return truncated;
+        }
+    }
+
+    /**
+     * Sorted list of sequence numbers backed by a long[].
+     * Appends go on the end; evictions only ever remove from the front.
+     */
+    private static final class PostingList {
+        /** Most chat terms appear only once, so start with a single slot. */
+        private static final int MIN_CAPACITY = 1;
+
+        private long[] seqs = new long[MIN_CAPACITY];
+        private int head;
+        private int tail;
+
+        void add(long seq) {
+            if (tail == seqs.length) {
+                if (head > 0 && head >= seqs.length / 2) {
+                    // Plenty of evicted slots at the front: slide down instead of growing.
+                    System.arraycopy(seqs, head, seqs, 0, tail - head);
+                    tail -= head;
+                    head = 0;
+                } else {
+                    seqs = Arrays.copyOf(seqs, seqs.length * 2);
+                }
+            }
+            seqs[tail++] = seq;
+        }
+
+        /**
+         * Drop the first posting if it is seq, halving the array once it is
+         * less than a quarter full.
+         *
+         * @return true if the list is now empty
+         */
+        boolean removeFirst(long seq) {
+            if (head < tail && seqs[head] == seq) {
+                head++;
+                if (seqs.length > MIN_CAPACITY && size() < seqs.length / 4) {
+                    long[] smaller = new long[Math.max(MIN_CAPACITY, seqs.length / 2)];
+                    System.arraycopy(seqs, head, smaller, 0, size());
+                    tail = size();
+                    head = 0;
+                    seqs = smaller;
+                }
+            }
+            return head == tail;
+        }
+
+        /**
+         * Gallop backwards from index from to the last posting that is <= seq.
+         *
+         * @param from index to start from (the result is never greater)
+         * @param seq upper bound
+         * @param scan budget to charge one unit per comparison
+         * @return index of the last posting <= seq, or -1 if there is none
+         */
+        int seekAtMost(int from, long seq, Scan scan) {
+            scan.charge(1);
+            if (get(from) <= seq) {
+                return from;
+            }
+            // get(hi) > seq throughout; widen the step until get(lo) <= seq.
+            int hi = from;
+            int step = 1;
+            int lo = hi - step;
+            while (lo >= 0) {
+                scan.charge(1);
+                if (get(lo) <= seq) {
+                    break;
+                }
+                hi = lo;
+                step *= 2;
+                lo = hi - step;
+            }
+            lo = Math.max(lo, -1);
+            // Invariant: get(lo) <= seq (or lo == -1), get(hi) > seq.
+            while (hi - lo > 1) {
+                scan.charge(1);
+                int mid = (lo + hi) >>> 1;
+                if (get(mid) <= seq) {
+                    lo = mid;
+                } else {
+                    hi = mid;
+                }
+            }
+            return lo;
+        }
+
+        int size() {
+            return tail - head;
+        }
+
+        long get(int i) {
+            return seqs[head + i];
+        }
+    }
+
+    /** Work budget for one search intersection: a postings-comparison count. */
+    private static final class Scan {
+        private int remaining;
+
+        Scan(int budget) {
+            this.remaining = budget;
+        }
+
+        void charge(int cost) {
+            remaining -= cost;
+        }
+
+        boolean exhausted() {
+            return remaining <= 0;
+        }
+    }
+
+    /**
+     * Maximum posting comparisons one search may make before it stops and
+     * returns a truncated result. Keeps a search well under a millisecond,
+     * which matters because it holds the lock every client thread needs to
+     * add messages.
+     */
+    static final int MAX_SEARCH_COMPARISONS = 20_000;
+
+    /** Characters of each message that are stored and indexed. */
+    static final int MAX_TEXT_CHARS = 1_000;
+
+    /** Distinct terms indexed per message; later terms are ignored. */
+    static final int MAX_TERMS_PER_MESSAGE = 32;
+
+    /** Longer terms are cut to this many characters (in messages and queries alike). */
+    static final int MAX_TERM_CHARS = 32;
+
+    /** Expired messages evicted per lock hold, so cleanup never stalls posting. */
+    static final int EVICTION_CHUNK = 256;
+
+    /** Estimated heap cost of one stored message, excluding its text. */
+    private static final long MESSAGE_BYTES = 64;
+
+    /** Estimated heap cost of one distinct term: map entry, key, PostingList and array. */
+    private static final long TERM_BYTES = 128;
+
+    /** Estimated heap cost of one posting. */
+    private static final long POSTING_BYTES = Long.BYTES;
+
+    private final int maxMessages;
+    private final long maxAgeMillis;
+    private final long maxBytes;
+    private final LongSupplier clock;
+
+    /** Message storage, a ring buffer addressed by seq. Grows up to maxMessages. */
+    private long[] timestamps = new long[16];
+    private String[] senders = new String[16];
+    private String[] texts = new String[16];
+
+    /** Sequence number of the oldest retained message. */
+    private long firstSeq;
+    /** Sequence number the next added message will get. */
+    private long nextSeq;
+
+    private final Map<String, PostingList> termIndex = new HashMap<>();
+    private final Map<String, PostingList> senderIndex = new HashMap<>();
+
+    /** Approximate heap used by stored messages and both indexes. */
+    private long estimatedBytes;
+
+    /**
+     * Create an empty index.
+     *
+     * @param maxMessages maximum number of messages to retain (must be positive)
+     * @param maxAgeMillis maximum age of a retained message in milliseconds (must be positive)
+     * @param maxBytes approximate heap the index may use (must be positive)
+     * @throws IllegalArgumentException if any limit is not positive
+     */
+    public MessageHistoryIndex(int maxMessages, long maxAgeMillis, long maxBytes) {
+        this(maxMessages, maxAgeMillis, maxBytes, System::currentTimeMillis);
+    }
+
+    /**
+     * Create an empty index with an explicit time source.
+     *
+     * @param maxMessages maximum number of messages to retain (must be positive)
+     * @param maxAgeMillis maximum age of a retained message in milliseconds (must be positive)
+     * @param maxBytes approximate heap the index may use (must be positive)
+     * @param clock supplies the current time in milliseconds
+     * @throws IllegalArgumentException if any limit is not positive
+     */
+    MessageHistoryIndex(int maxMessages, long maxAgeMillis, long maxBytes, LongSupplier clock) {
+        if (maxMessages < 1) {
+            throw new IllegalArgumentException("maxMessages must be positive, got " + maxMessages);
+        }
+        if (maxAgeMillis < 1) {
+            throw new IllegalArgumentException("maxAgeMillis must be positive, got " + maxAgeMillis);
+        }
+        if (maxBytes < 1) {
+            throw new IllegalArgumentException("maxBytes must be positive, got " + maxBytes);
+        }
+        this.maxMessages = maxMessages;
+        this.maxAgeMillis = maxAgeMillis;
+        this.maxBytes = maxBytes;
+        this.clock = clock;
+    }
+
+    /**
+     * Index a message, evicting old messages as needed.
+     *
+     * Text beyond MAX_TEXT_CHARS is dropped before the message is stored.
+     *
+     * @param sender sender username
+     * @param text message text
+     */
+    public synchronized void add(String sender, String text) {
+        long now = clock.getAsLong();
+        evictOlderThan(now - maxAgeMillis, EVICTION_CHUNK);
+
+        String stored = text.length() > MAX_TEXT_CHARS ? text.substring(0, MAX_TEXT_CHARS) : text;
+        Set<String> terms = tokenize(stored);
+
+        // Worst case: every term (and the sender) is new to the index.
+        long cost = messageBytes(stored) + termBytes(sender) + POSTING_BYTES;
+        for (String term : terms) {
+            cost += termBytes(term) + POSTING_BYTES;
+        }
+        while (nextSeq > firstSeq && (nextSeq - firstSeq == maxMessages || estimatedBytes + cost > maxBytes)) {
+            evictOldest();
+        }
+        ensureCapacity();
+
+        long seq = nextSeq++;
+        int slot = slot(seq);
+        timestamps[slot] = now;
+        senders[slot] = sender;
+        texts[slot] = stored;
+        estimatedBytes += messageBytes(stored);
+
+        for (String term : terms) {
+            addPosting(termIndex, term, seq);
+        }
+        addPosting(senderIndex, sender, seq);
+    }
+
+    /**
+     * Evict every message older than maxAgeMillis.
+     *
+     * Works in chunks of EVICTION_CHUNK, releasing the lock between chunks so
+     * clients can keep posting during a large cleanup. Meant to be called
+     * periodically (e.g. from the server heartbeat).
+     */
+    public void evictExpired() {
+        while (evictExpiredChunk() == EVICTION_CHUNK) {
+            Thread.yield();
+        }
+    }
+
+    private synchronized int evictExpiredChunk() {
+        return evictOlderThan(clock.getAsLong() - maxAgeMillis, EVICTION_CHUNK);
+    }
+
+    /**
+     * Find the newest messages containing every term in the query.
+     *
+     * Query format:
+     * - whitespace-separated words, matched case-insensitively as whole words
+     * - "from:USER" restricts results to messages sent by USER
+     *
+     * If the search runs out of its MAX_SEARCH_COMPARISONS budget, it returns
+     * the newest matches found so far and marks the result as truncated.
+     *
+     * @param query search query
+     * @param limit maximum number of results to return
+     * @return matching messages, newest first (empty if the query has no terms)
+     */
+    public synchronized SearchResult search(String query, int limit) {
+        long cutoff = clock.getAsLong() - maxAgeMillis;
+        evictOlderThan(cutoff, EVICTION_CHUNK);
+
+        List<PostingList> lists = new ArrayList<>();
+        boolean hasCriteria = false;
+        for (String token : query.trim().split("\\s+")) {
+            if (token.isEmpty()) {
+                continue;
+            }
+            List<String> words;
+            Map<String, PostingList> index;
+            if (token.startsWith("from:") && token.length() > "from:".length()) {
+                words = List.of(token.substring("from:".length()));
+                index = senderIndex;
+            } else {
+                words = new ArrayList<>(tokenize(token));
+                index = termIndex;
+            }
+            for (String word : words) {
+                hasCriteria = true;
+                PostingList postings = index.get(word);
+                if (postings == null) {
+                    return new SearchResult(List.of(), false);
+                }
+                lists.add(postings);
+            }
+        }
+        if (!hasCriteria || limit < 1) {
+            return new SearchResult(List.of(), false);
+        }
+
+        // Leapfrog intersection from the newest postings backwards: each list
+        // gallops to the last posting <= the current candidate.
+        lists.sort((a, b) -> Integer.compare(a.size(), b.size()));
+        int[] pos = new int[lists.size()];
+        for (int j = 0; j < pos.length; j++) {
+            pos[j] = lists.get(j).size() - 1;
+        }
+        Scan scan = new Scan(MAX_SEARCH_COMPARISONS);
+        List<Entry> results = new ArrayList<>();
+        boolean truncated = false;
+        PostingList first = lists.get(0);
+        search:
+        while (results.size() < limit && pos[0] >= 0) {
+            if (scan.exhausted()) {
+                truncated = true;
+                break;
+            }
+            long candidate = first.get(pos[0]);
+            scan.charge(1);
+            for (int j = 1; j < pos.length; j++) {
+                PostingList other = lists.get(j);
+                pos[j] = other.seekAtMost(pos[j], candidate, scan);
+                if (pos[j] < 0) {
+                    break search;
+                }
+                long found = other.get(pos[j]);
+                if (found < candidate) {
+                    pos[0] = first.seekAtMost(pos[0], found, scan);
+                    continue search;
+                }
+            }
+            int slot = slot(candidate);
+            if (timestamps[slot] < cutoff) {
+                // Expired but not evicted yet; everything older is expired too.
+                break;
+            }
+            results.add(new Entry(candidate, senders[slot], texts[slot]));
+            pos[0]--;
+        }
+        return new SearchResult(results, truncated);
+    }
+
+    /**
+     * @return number of messages currently retained, including expired
+     *         messages that have not been evicted yet
+     */
+    public synchronized int size() {
+        return (int) (nextSeq - firstSeq);
+    }
+
+    /**
+     * @return approximate heap used by the index, as counted against maxBytes
+     */
+    synchronized long estimatedBytes() {
+        return estimatedBytes;
+    }
+
+    /**
+     * Split text into distinct lowercase words (runs of letters/digits).
+     *
+     * Words are cut to MAX_TERM_CHARS, and at most MAX_TERMS_PER_MESSAGE are returned.
+     *
+     * @param text text to split
+     * @return distinct terms in first-seen order
+     */
+    private static Set<String> tokenize(String text) {
+        Set<String> terms = new LinkedHashSet<>();
+        String lower = text.toLowerCase(Locale.ROOT);
+        int start = -1;
+        for (int i = 0; i <= lower.length() && terms.size() < MAX_TERMS_PER_MESSAGE; i++) {
+            boolean wordChar = i < lower.length() && Character.isLetterOrDigit(lower.charAt(i));
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                terms.add(lower.substring(start, Math.min(i, start + MAX_TERM_CHARS)));
+                start = -1;
+            }
+        }
+        return terms;
+    }
+
+    private static long messageBytes(String text) {
+        return MESSAGE_BYTES + 2L * text.length();
+    }
+
+    private static long termBytes(String term) {
+        return TERM_BYTES + 2L * term.length();
+    }
+
+    private int slot(long seq) {
+        return (int) (seq % texts.length);
+    }
+
+    /** Grow the ring buffer (up to maxMessages) if it is full. */
+    private void ensureCapacity() {
+        int count = (int) (nextSeq - firstSeq);
+        if (count < texts.length || texts.length >= maxMessages) {
+            return;
+        }
+        int newLength = (int) Math.min((long) texts.length * 2, maxMessages);
+        long[] newTimestamps = new long[newLength];
+        String[] newSenders = new String[newLength];
+        String[] newTexts = new String[newLength];
+        for (long seq = firstSeq; seq < nextSeq; seq++) {
+            int from = slot(seq);
+            int to = (int) (seq % newLength);
+            newTimestamps[to] = timestamps[from];
+            newSenders[to] = senders[from];
+            newTexts[to] = texts[from];
+        }
+        timestamps = newTimestamps;
+        senders = newSenders;
+        texts = newTexts;
+    }
+
+    /**
+     * Evict up to max messages older than cutoff.
+     *
+     * @return number of messages evicted
+     */
+    private int evictOlderThan(long cutoff, int max) {
+        int evicted = 0;
+        while (evicted < max && firstSeq < nextSeq && timestamps[slot(firstSeq)] < cutoff) {
+            evictOldest();
+            evicted++;
+        }
+        return evicted;
+    }
+
+    /** Remove the oldest message and its postings. */
+    private void evictOldest() {
+        long seq = firstSeq++;
+        int slot = slot(seq);
+        for (String term : tokenize(texts[slot])) {
+            removePosting(termIndex, term, seq);
+        }
+        removePosting(senderIndex, senders[slot], seq);
+        estimatedBytes -= messageBytes(texts[slot]);
+        senders[slot] = null;
+        texts[slot] = null;
+    }
+
+    private void addPosting(Map<String, PostingList> index, String key, long seq) {
+        PostingList postings = index.get(key);
+        if (postings == null) {
+            postings = new PostingList();
+            index.put(key, postings);
+            estimatedBytes += termBytes(key);
+        }
+        postings.add(seq);
+        estimatedBytes += POSTING_BYTES;
+    }
+
+    private void removePosting(Map<String, PostingList> index, String key, long seq) {
+        PostingList postings = index.get(key);
+        if (postings == null) {
+            return;
+        }
+        estimatedBytes -= POSTING_BYTES;
+        if (postings.removeFirst(seq)) {
+            index.remove(key);
+            estimatedBytes -= termBytes(key);
+        }
+    }
+}
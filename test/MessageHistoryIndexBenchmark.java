@@ -0,0 +1,65 @@
+import java.util.Arrays;
+import java.util.Random;
+
+/*
+ To compile and run:
+
+ javac -d out src/*.java test/*.java && java -cp out MessageHistoryIndexBenchmark
+*/
+
+/**
+ * Measures MessageHistoryIndex search latency over a full (1,000,000 message) index.
+ *
+ * Prints the median and worst latency of each query after a warm-up pass.
+ */
+public class MessageHistoryIndexBenchmark {
+    private static final int MESSAGES = 1_000_000;
+    private static final int RUNS = 200;
+
+    private static final String[] QUERIES = {
+        "hello",
+        "rare",
+        "rare from:bob",
+        "hello w42",
+        "x7 x8",
+        "foo bar",
+    };
+
+    /**
+     * Build the index and time each query.
+     *
+     * @param args ignored
+     */
+    public static void main(String[] args) {
+        MessageHistoryIndex index = new MessageHistoryIndex(MESSAGES, Long.MAX_VALUE, Long.MAX_VALUE);
+        String[] users = {"ann", "bob", "cat"};
+        Random random = new Random(1);
+        for (int i = 0; i < MESSAGES; i++) {
+            String text = "hello w" + random.nextInt(5_000) + " x" + random.nextInt(50)
+                    + (i % 2 == 0 ? " foo" : " bar")
+                    + (i % 1_000 == 0 ? " rare" : "");
+            index.add(users[i % users.length], text);
+        }
+        System.out.println("Indexed " + index.size() + " messages.");
+
+        for (int pass = 0; pass < 2; pass++) {
+            boolean warmup = pass == 0;
+            for (String query : QUERIES) {
+                long[] nanos = new long[RUNS];
+                String outcome = "";
+                for (int run = 0; run < RUNS; run++) {
+                    long start = System.nanoTime();
+                    MessageHistoryIndex.SearchResult result = index.search(query, 10);
+                    outcome = result.getEntries().size() + " result(s)" + (result.isTruncated() ? ", truncated" : "");
+                    nanos[run] = System.nanoTime() - start;
+                }
+                if (!warmup) {
+                    Arrays.sort(nanos);
+                    System.out.printf("%-16s median %6d us, p99 %6d us, max %6d us  (%s)%n",
+                            "'" + query + "'", nanos[RUNS / 2] / 1_000,
+                            nanos[RUNS * 99 / 100] / 1_000, nanos[RUNS - 1] / 1_000, outcome);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,235 @@
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ To compile and run:
+
+ javac -d out src/*.java test/*.java && java -cp out MessageHistoryIndexTest
+*/
+
+/**
+ * Self-checking tests for MessageHistoryIndex.
+ *
+ * Exits with status 1 and a description of the first failure if any check fails.
+ */
+public class MessageHistoryIndexTest {
+    /** Manually advanced time source. */
+    private static final AtomicLong now = new AtomicLong(1_000_000);
+
+    /**
+     * Run every test.
+     *
+     * @param args ignored
+     */
+    public static void main(String[] args) {
+        try {
+            termsAreAndedAndCaseInsensitive();
+            fromRestrictsSender();
+            resultsAreNewestFirstAndLimited();
+            emptyAndUnknownQueries();
+            countEvictionDropsOldest();
+            ageEvictionDropsExpired();
+            ringBufferGrowthKeepsMessages();
+            broadQueryIsTruncated();
+            longMessagesAreCapped();
+            byteLimitForcesEviction();
+            expiryIsEvictedInChunks();
+        } catch (AssertionError e) {
+            System.err.println("FAILED: " + e.getMessage());
+            System.exit(1);
+        }
+        System.out.println("All MessageHistoryIndex tests passed.");
+    }
+
+    private static MessageHistoryIndex newIndex(int maxMessages, long maxAgeMillis) {
+        return newIndex(maxMessages, maxAgeMillis, Long.MAX_VALUE);
+    }
+
+    private static MessageHistoryIndex newIndex(int maxMessages, long maxAgeMillis, long maxBytes) {
+        return new MessageHistoryIndex(maxMessages, maxAgeMillis, maxBytes, now::get);
+    }
+
+    private static void termsAreAndedAndCaseInsensitive() {
+        MessageHistoryIndex index = newIndex(100, 60_000);
+        index.add("ann", "Hello World");
+        index.add("bob", "hello there");
+        index.add("cat", "world, hello!");
+
+        check(index.search("hello", 10).getEntries().size() == 3, "single term should match all three");
+        check(index.search("HELLO world", 10).getEntries().size() == 2, "AND of two terms should match two");
+        check(index.search("hello missing", 10).getEntries().isEmpty(), "unknown term should match nothing");
+        check(index.search("hel", 10).getEntries().isEmpty(), "prefixes should not match");
+    }
+
+    private static void fromRestrictsSender() {
+        MessageHistoryIndex index = newIndex(100, 60_000);
+        index.add("ann", "lunch today");
+        index.add("bob", "lunch tomorrow");
+        index.add("ann", "meeting");
+
+        List<MessageHistoryIndex.Entry> results = index.search("lunch from:ann", 10).getEntries();
+        check(results.size() == 1, "from: should restrict to one message");
+        check(results.get(0).getSender().equals("ann"), "from: result should be ann's");
+        check(index.search("from:ann", 10).getEntries().size() == 2, "from: alone should list all of ann's messages");
+        check(index.search("from:nobody", 10).getEntries().isEmpty(), "unknown sender should match nothing");
+    }
+
+    private static void resultsAreNewestFirstAndLimited() {
+        MessageHistoryIndex index = newIndex(100, 60_000);
+        for (int i = 0; i < 20; i++) {
+            index.add("ann", "ping " + i);
+        }
+
+        List<MessageHistoryIndex.Entry> results = index.search("ping", 5).getEntries();
+        check(results.size() == 5, "limit should cap results");
+        check(results.get(0).getText().equals("ping 19"), "newest result should come first");
+        check(results.get(4).getText().equals("ping 15"), "results should be in descending order");
+    }
+
+    private static void emptyAndUnknownQueries() {
+        MessageHistoryIndex index = newIndex(100, 60_000);
+        index.add("ann", "hello");
+
+        check(index.search("", 10).getEntries().isEmpty(), "blank query should match nothing");
+        check(index.search("  ?! ", 10).getEntries().isEmpty(), "punctuation-only query should match nothing");
+        check(index.search("hello", 0).getEntries().isEmpty(), "zero limit should return nothing");
+    }
+
+    private static void countEvictionDropsOldest() {
+        MessageHistoryIndex index = newIndex(3, 60_000);
+        index.add("ann", "alpha common");
+        index.add("bob", "beta common");
+        index.add("ann", "gamma common");
+        index.add("bob", "delta common");
+
+        check(index.size() == 3, "size should be capped at maxMessages");
+        check(index.search("alpha", 10).getEntries().isEmpty(), "evicted message should not be found");
+        check(index.search("common", 10).getEntries().size() == 3, "remaining postings should survive eviction");
+        check(index.search("from:ann", 10).getEntries().size() == 1, "sender postings should be trimmed too");
+    }
+
+    private static void ageEvictionDropsExpired() {
+        MessageHistoryIndex index = newIndex(100, 1_000);
+        index.add("ann", "old news");
+        now.addAndGet(600);
+        index.add("bob", "fresh news");
+
+        check(index.search("news", 10).getEntries().size() == 2, "nothing should expire yet");
+        now.addAndGet(600);
+        check(index.search("news", 10).getEntries().size() == 1, "message older than maxAge should be gone");
+        check(index.search("old", 10).getEntries().isEmpty(), "expired term should not be found");
+        check(index.size() == 1, "size should reflect age eviction");
+        now.addAndGet(1_000);
+        check(index.search("news", 10).getEntries().isEmpty(), "all messages should have expired");
+        index.evictExpired();
+        check(index.size() == 0, "index should be empty after everything expires");
+        check(index.estimatedBytes() == 0, "an empty index should account for no bytes");
+    }
+
+    private static void ringBufferGrowthKeepsMessages() {
+        // Fill past the initial ring capacity, evict some, then grow again so
+        // the ring wraps before it is resized.
+        MessageHistoryIndex index = newIndex(100, 60_000);
+        for (int i = 0; i < 100; i++) {
+            index.add("ann", "msg m" + i);
+        }
+        for (int i = 100; i < 150; i++) {
+            index.add("ann", "msg m" + i);
+        }
+
+        check(index.size() == 100, "size should be capped at maxMessages");
+        check(index.search("m49", 10).getEntries().isEmpty(), "oldest messages should be evicted");
+        for (int i = 50; i < 150; i++) {
+            List<MessageHistoryIndex.Entry> results = index.search("m" + i, 10).getEntries();
+            check(results.size() == 1 && results.get(0).getText().equals("msg m" + i),
+                    "message m" + i + " should survive ring growth");
+        }
+    }
+
+    private static void broadQueryIsTruncated() {
+        MessageHistoryIndex index = newIndex(1_000_000, 60_000);
+        for (int i = 0; i < 200_000; i++) {
+            // foo and bar are both common but never appear in the same message.
+            index.add("ann", i % 2 == 0 ? "foo" : "bar");
+        }
+
+        MessageHistoryIndex.SearchResult disjoint = index.search("foo bar", 10);
+        check(disjoint.isTruncated(), "exhausting the budget should mark the result truncated");
+
+        index.add("ann", "foo bar older");
+        index.add("ann", "foo bar newest");
+        MessageHistoryIndex.SearchResult partial = index.search("foo bar", 10);
+        check(partial.isTruncated(), "a broad query should still stop early");
+        check(partial.getEntries().size() == 2, "matches found before the budget ran out should be kept");
+        check(partial.getEntries().get(0).getText().equals("foo bar newest"), "kept matches should be newest first");
+
+        MessageHistoryIndex.SearchResult single = index.search("foo", 10);
+        check(!single.isTruncated() && single.getEntries().size() == 10, "a single common term is still cheap");
+    }
+
+    private static void longMessagesAreCapped() {
+        MessageHistoryIndex index = newIndex(100, 60_000);
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 1_000; i++) {
+            text.append('w').append(i).append(' ');
+        }
+        index.add("ann", text.toString());
+
+        List<MessageHistoryIndex.Entry> results = index.search("w0", 10).getEntries();
+        check(results.size() == 1, "early words of a long message should be indexed");
+        check(results.get(0).getText().length() == MessageHistoryIndex.MAX_TEXT_CHARS,
+                "stored text should be cut to MAX_TEXT_CHARS");
+        check(index.search("w" + (MessageHistoryIndex.MAX_TERMS_PER_MESSAGE - 1), 10).getEntries().size() == 1,
+                "the last allowed term should be indexed");
+        check(index.search("w" + MessageHistoryIndex.MAX_TERMS_PER_MESSAGE, 10).getEntries().isEmpty(),
+                "terms past MAX_TERMS_PER_MESSAGE should not be indexed");
+
+        String longWord = "x".repeat(500);
+        index.add("bob", longWord);
+        check(index.search(longWord, 10).getEntries().size() == 1, "long words should match when cut consistently");
+    }
+
+    private static void byteLimitForcesEviction() {
+        long maxBytes = 200_000;
+        MessageHistoryIndex index = newIndex(1_000_000, 60_000, maxBytes);
+        for (int i = 0; i < 10_000; i++) {
+            StringBuilder text = new StringBuilder();
+            for (int j = 0; j < 50; j++) {
+                text.append('u').append(i).append('_').append(j).append(' ');
+            }
+            index.add("ann", text.toString());
+            check(index.estimatedBytes() <= maxBytes, "estimated bytes should never exceed maxBytes");
+        }
+
+        check(index.size() < 10_000, "unique-word flood should force eviction below the count cap");
+        check(index.search("u9999", 10).getEntries().size() == 1, "newest message should be kept");
+        check(index.search("u0", 10).getEntries().isEmpty(), "oldest message should be evicted");
+
+        index.add("bob", "small");
+        check(index.search("small", 10).getEntries().size() == 1, "index should keep accepting messages");
+    }
+
+    private static void expiryIsEvictedInChunks() {
+        MessageHistoryIndex index = newIndex(100_000, 1_000);
+        int count = MessageHistoryIndex.EVICTION_CHUNK * 10;
+        for (int i = 0; i < count; i++) {
+            index.add("ann", "stale");
+        }
+        now.addAndGet(2_000);
+        index.add("bob", "fresh");
+
+        check(index.size() == count + 1 - MessageHistoryIndex.EVICTION_CHUNK,
+                "one add should evict at most EVICTION_CHUNK expired messages");
+        check(index.search("stale", 10).getEntries().isEmpty(), "expired messages should never be returned");
+        check(index.search("from:ann", 10).getEntries().isEmpty(), "expired sender postings should not match");
+        index.evictExpired();
+        check(index.size() == 1, "evictExpired should finish the cleanup");
+        check(index.search("fresh", 10).getEntries().size() == 1, "live message should survive cleanup");
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new AssertionError(message);
+        }
+    }
+}